@@ -1,8 +1,11 @@
 package com.customermanagementapp.CustomerManager.controller;
 
+import com.customermanagementapp.CustomerManager.dto.CustomerRankDTO;
 import com.customermanagementapp.CustomerManager.dto.CustomerResponseDTO;
+import com.customermanagementapp.CustomerManager.dto.ReadCoalescingStatsDTO;
 import com.customermanagementapp.CustomerManager.entity.Customer;
 import com.customermanagementapp.CustomerManager.error.CustomerNotFoundException;
+import com.customermanagementapp.CustomerManager.error.InvalidRequestParameterException;
 import com.customermanagementapp.CustomerManager.service.CustomerService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -77,6 +80,43 @@ public class CustomerController {
         return ResponseEntity.ok(customerDTO);
     }
 
+    @Operation(summary = "Get top customers by annual spend", description = "Retrieve the customers with the highest annual spend, highest first, optionally restricted to a membership tier. Platinum and Gold reads walk only their spend band; Bronze also covers lapsed customers at any spend.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Top customers found",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = CustomerResponseDTO.class)) }),
+            @ApiResponse(responseCode = "400", description = "Invalid limit or tier",
+                    content = @Content)
+    })
+    @GetMapping("/top")
+    public ResponseEntity<List<CustomerResponseDTO>> getTopSpenders(
+            @Parameter(description = "Maximum number of customers to return (1-1000)") @RequestParam(defaultValue = "100") int limit,
+            @Parameter(description = "Only include customers in this membership tier (Platinum, Gold or Bronze)") @RequestParam(required = false) String tier) throws InvalidRequestParameterException {
+        return ResponseEntity.ok(customerService.getTopSpendersDTO(limit, tier));
+    }
+
+    @Operation(summary = "Get spend rank for a customer by ID", description = "Return the customer's 1-based position among all customers ordered by annual spend, highest first.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Rank found",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = CustomerRankDTO.class)) }),
+            @ApiResponse(responseCode = "404", description = "Customer not found",
+                    content = @Content)
+    })
+    @GetMapping("/{id}/rank")
+    public ResponseEntity<CustomerRankDTO> getCustomerSpendRank(
+            @Parameter(description = "ID of the customer to rank") @PathVariable Long id) throws CustomerNotFoundException {
+        return ResponseEntity.ok(customerService.getSpendRankDTO(id));
+    }
+
+    @Operation(summary = "Get read coalescing statistics", description = "Return, per read operation, how many repository calls were executed and how many concurrent identical requests shared an in-flight call instead.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Statistics returned",
+                    content = { @Content(mediaType = "application/json", schema = @Schema(implementation = ReadCoalescingStatsDTO.class)) })
+    })
+    @GetMapping("/coalescing-stats")
+    public ResponseEntity<List<ReadCoalescingStatsDTO>> getReadCoalescingStats() {
+        return ResponseEntity.ok(customerService.getReadCoalescingStats());
+    }
+
     @Operation(summary = "Create a new customer")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "Customer created",
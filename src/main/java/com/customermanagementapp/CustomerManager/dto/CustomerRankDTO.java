@@ -0,0 +1,18 @@
+package com.customermanagementapp.CustomerManager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CustomerRankDTO {
+
+    private Long id;
+    private BigDecimal annualSpend;
+    private long rank; // 1-based position by annual spend, highest first
+    private long totalCustomers;
+}
@@ -0,0 +1,16 @@
+package com.customermanagementapp.CustomerManager.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadCoalescingStatsDTO {
+
+    private String operation;
+    private long executed; // Repository calls actually made
+    private long coalesced; // Requests answered from another request's in-flight call, i.e. repository calls saved
+    private long waitTimeouts; // Requests that gave up waiting on the in-flight call and queried on their own
+}
@@ -0,0 +1,24 @@
+package com.customermanagementapp.CustomerManager.error;
+
+public class InvalidRequestParameterException extends Exception{
+
+    public InvalidRequestParameterException() {
+        super();
+    }
+
+    public InvalidRequestParameterException(String message) {
+        super(message);
+    }
+
+    public InvalidRequestParameterException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public InvalidRequestParameterException(Throwable cause) {
+        super(cause);
+    }
+
+    protected InvalidRequestParameterException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
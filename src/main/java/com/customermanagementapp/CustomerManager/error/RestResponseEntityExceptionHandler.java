@@ -21,5 +21,13 @@ public class RestResponseEntityExceptionHandler
 
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(message);
     }
+
+    @ExceptionHandler(InvalidRequestParameterException.class)
+    public ResponseEntity<ErrorMessage> invalidRequestParameterException(InvalidRequestParameterException invalidRequestParameterException,
+                                                                          WebRequest request){
+        ErrorMessage message = new ErrorMessage(HttpStatus.BAD_REQUEST, invalidRequestParameterException.getMessage());
+
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(message);
+    }
 }
 
@@ -1,51 +1,132 @@
 package com.customermanagementapp.CustomerManager.service;
 
+import com.customermanagementapp.CustomerManager.dto.CustomerRankDTO;
 import com.customermanagementapp.CustomerManager.dto.CustomerResponseDTO;
+import com.customermanagementapp.CustomerManager.dto.ReadCoalescingStatsDTO;
 import com.customermanagementapp.CustomerManager.entity.Customer;
 import com.customermanagementapp.CustomerManager.error.CustomerNotFoundException;
+import com.customermanagementapp.CustomerManager.error.InvalidRequestParameterException;
 import com.customermanagementapp.CustomerManager.repository.CustomerRepository;
+import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class CustomerService {
+    public static final int MAX_TOP_SPENDERS = 1000;
+
+    public static final String PLATINUM = "Platinum";
+    public static final String GOLD = "Gold";
+    public static final String BRONZE = "Bronze";
+    public static final BigDecimal GOLD_SPEND_THRESHOLD = new BigDecimal("1000");
+    public static final BigDecimal PLATINUM_SPEND_THRESHOLD = new BigDecimal("10000");
+
+    // Operation names used to key and count coalesced reads
+    private static final String ALL_CUSTOMERS = "getAllCustomers";
+    private static final String CUSTOMER_BY_ID = "getCustomerById";
+    private static final String CUSTOMERS_BY_NAME = "getCustomersByName";
+    private static final String CUSTOMER_BY_EMAIL = "getCustomerByEmail";
+
     private final CustomerRepository customerRepository;
+    private final SpendRankingIndex spendRankingIndex;
+    private final EntityManager entityManager;
+    private final SingleFlight readCoalescer;
 
     @Autowired
-    public CustomerService(CustomerRepository customerRepository) {
+    public CustomerService(CustomerRepository customerRepository, SpendRankingIndex spendRankingIndex, EntityManager entityManager,
+                           @Value("${customer.read-coalescing.max-wait:2s}") Duration readCoalescingMaxWait) {
         this.customerRepository = customerRepository;
+        this.spendRankingIndex = spendRankingIndex;
+        this.entityManager = entityManager;
+        this.readCoalescer = new SingleFlight(readCoalescingMaxWait);
     }
 
     // --- Retrieval Methods (Now returning DTOs) ---
+    // Concurrent identical reads share one repository call through readCoalescer, so the returned
+    // DTOs may be shared between callers and must not be modified.
 
     public List<CustomerResponseDTO> getAllCustomersDTO() {
-        return customerRepository.findAll().stream()
+        return readCoalescer.execute(ALL_CUSTOMERS, "", () -> customerRepository.findAll().stream()
                 .map(customer -> CustomerResponseDTO.fromEntity(customer, calculateMembershipTier(customer, LocalDateTime.now())))
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
     public CustomerResponseDTO getCustomerByIdDTO(Long id) throws CustomerNotFoundException {
-        Customer customer = customerRepository.findById(id)
-                .orElseThrow(() -> new CustomerNotFoundException("Customer not found with id: " + id));
-        return CustomerResponseDTO.fromEntity(customer, calculateMembershipTier(customer, LocalDateTime.now()));
+        return readCoalescer.execute(CUSTOMER_BY_ID, String.valueOf(id), () -> {
+            Customer customer = customerRepository.findById(id)
+                    .orElseThrow(() -> new CustomerNotFoundException("Customer not found with id: " + id));
+            return CustomerResponseDTO.fromEntity(customer, calculateMembershipTier(customer, LocalDateTime.now()));
+        });
     }
 
     public List<CustomerResponseDTO> getCustomersByNameDTO(String name) {
-        return customerRepository.findByNameContainingIgnoreCase(name).stream()
+        // The name search ignores case, so differently cased searches can share one call
+        return readCoalescer.execute(CUSTOMERS_BY_NAME, name.toLowerCase(Locale.ROOT), () -> customerRepository.findByNameContainingIgnoreCase(name).stream()
                 .map(customer -> CustomerResponseDTO.fromEntity(customer, calculateMembershipTier(customer, LocalDateTime.now())))
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
     public Optional<CustomerResponseDTO> getCustomerByEmailDTO(String email) {
-        Optional<Customer> customerOptional = customerRepository.findByEmail(email);
-        // Map the Optional<Customer> to Optional<CustomerResponseDTO>
-        return customerOptional.map(customer -> CustomerResponseDTO.fromEntity(customer, calculateMembershipTier(customer, LocalDateTime.now())));
+        return readCoalescer.execute(CUSTOMER_BY_EMAIL, email, () -> {
+            Optional<Customer> customerOptional = customerRepository.findByEmail(email);
+            // Map the Optional<Customer> to Optional<CustomerResponseDTO>
+            return customerOptional.map(customer -> CustomerResponseDTO.fromEntity(customer, calculateMembershipTier(customer, LocalDateTime.now())));
+        });
+    }
+
+    public List<ReadCoalescingStatsDTO> getReadCoalescingStats() {
+        return readCoalescer.stats().entrySet().stream()
+                .map(entry -> new ReadCoalescingStatsDTO(entry.getKey(), entry.getValue().executed(),
+                        entry.getValue().coalesced(), entry.getValue().waitTimeouts()))
+                .collect(Collectors.toList());
+    }
+
+    // --- Spend Ranking (served from the in-memory SpendRankingIndex) ---
+
+    /**
+     * Returns the customers with the highest annual spend, highest first.
+     * When a tier is given, only customers currently in that membership tier are returned. Platinum and Gold reads
+     * walk only their spend band; Bronze also covers lapsed customers at any spend, so it walks from the top.
+     */
+    public List<CustomerResponseDTO> getTopSpendersDTO(int limit, String tier) throws InvalidRequestParameterException {
+        if (limit < 1 || limit > MAX_TOP_SPENDERS) {
+            throw new InvalidRequestParameterException("limit must be between 1 and " + MAX_TOP_SPENDERS);
+        }
+        boolean anyTier = tier == null || tier.isEmpty();
+        Stream<Customer> candidates;
+        if (anyTier || BRONZE.equalsIgnoreCase(tier)) {
+            candidates = spendRankingIndex.highestSpendFirst(null, null);
+        } else if (PLATINUM.equalsIgnoreCase(tier)) {
+            candidates = spendRankingIndex.highestSpendFirst(PLATINUM_SPEND_THRESHOLD, null);
+        } else if (GOLD.equalsIgnoreCase(tier)) {
+            candidates = spendRankingIndex.highestSpendFirst(GOLD_SPEND_THRESHOLD, PLATINUM_SPEND_THRESHOLD);
+        } else {
+            throw new InvalidRequestParameterException("tier must be one of " + PLATINUM + ", " + GOLD + " or " + BRONZE);
+        }
+
+        // Within a spend band the tier still depends on the last purchase date, so it is checked per customer
+        LocalDateTime now = LocalDateTime.now();
+        return candidates
+                .map(customer -> CustomerResponseDTO.fromEntity(customer, calculateMembershipTier(customer, now)))
+                .filter(dto -> anyTier || tier.equalsIgnoreCase(dto.getMemberShipTier()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    public CustomerRankDTO getSpendRankDTO(Long id) throws CustomerNotFoundException {
+        SpendRankingIndex.RankedCustomer ranked = spendRankingIndex.rankOf(id)
+                .orElseThrow(() -> new CustomerNotFoundException("Customer not found with id: " + id));
+        return new CustomerRankDTO(id, ranked.customer().getAnnualSpend(), ranked.rank(), ranked.total());
     }
 
     public List<Customer> getAllCustomers() {
@@ -57,28 +138,66 @@ public class CustomerService {
                 .orElseThrow(() -> new CustomerNotFoundException("Customer not found with id: " + id));
     }
 
+    // Writes hold the customer's lock in SpendRankingIndex across the save and the index update,
+    // so concurrent writes to one customer reach the database and the index in the same order.
+
     public Customer createCustomer(Customer customer) {
-        return customerRepository.save(customer);
+        Customer savedCustomer = customerRepository.save(customer);
+        Long id = savedCustomer.getCustomerId();
+        spendRankingIndex.writeLocked(id, () -> {
+            // The ID is visible once saved, so an update or delete may already have run; index what is stored now.
+            // With open-in-view the saved entity stays cached for the whole request, so detach it to make findById query the database.
+            if (entityManager.contains(savedCustomer)) {
+                entityManager.detach(savedCustomer);
+            }
+            customerRepository.findById(id).ifPresent(spendRankingIndex::put);
+            return null;
+        });
+        forgetInFlightReads(id);
+        return savedCustomer;
     }
 
     public Customer updateCustomer(Long id, Customer customerDetails) throws CustomerNotFoundException {
-        Customer customer = getCustomerById(id); // Throws exception if not found
-
-        // Update fields
-        customer.setName(customerDetails.getName());
-        customer.setEmail(customerDetails.getEmail());
-        customer.setAnnualSpend(customerDetails.getAnnualSpend());
-        customer.setLastPurchaseDate(customerDetails.getLastPurchaseDate());
-
-        return customerRepository.save(customer);
+        Customer savedCustomer = spendRankingIndex.writeLocked(id, () -> {
+            Customer customer = getCustomerById(id); // Throws exception if not found
+
+            // Update fields
+            customer.setName(customerDetails.getName());
+            customer.setEmail(customerDetails.getEmail());
+            customer.setAnnualSpend(customerDetails.getAnnualSpend());
+            customer.setLastPurchaseDate(customerDetails.getLastPurchaseDate());
+
+            Customer saved = customerRepository.save(customer);
+            spendRankingIndex.put(saved);
+            return saved;
+        });
+        forgetInFlightReads(id);
+        return savedCustomer;
     }
 
     public void deleteCustomer(Long id) throws CustomerNotFoundException {
-        // Optional: Check if exists before deleting, or rely on JPA's behavior
-        if (!customerRepository.existsById(id)) {
-            throw new CustomerNotFoundException("Customer not found with id: " + id);
-        }
-        customerRepository.deleteById(id);
+        spendRankingIndex.writeLocked(id, () -> {
+            // Optional: Check if exists before deleting, or rely on JPA's behavior
+            if (!customerRepository.existsById(id)) {
+                throw new CustomerNotFoundException("Customer not found with id: " + id);
+            }
+            customerRepository.deleteById(id);
+            spendRankingIndex.remove(id);
+            return null;
+        });
+        forgetInFlightReads(id);
+    }
+
+    /**
+     * Stops reads that started before a write to this customer from being shared with reads arriving after it.
+     * Called once the write is saved, so any read issued after the write has returned runs a fresh query.
+     * Lookups by other IDs are unaffected; list and search reads may include the customer, so they are all dropped.
+     */
+    private void forgetInFlightReads(Long id) {
+        readCoalescer.forget(CUSTOMER_BY_ID, key -> key.equals(String.valueOf(id)));
+        readCoalescer.forgetAll(ALL_CUSTOMERS);
+        readCoalescer.forgetAll(CUSTOMERS_BY_NAME);
+        readCoalescer.forgetAll(CUSTOMER_BY_EMAIL);
     }
 
     // --- Tier Calculation Logic ---
@@ -100,26 +219,24 @@ public class CustomerService {
             return "Invalid Spend";
         }
 
-        BigDecimal spendThresholdGold = new BigDecimal("1000");
-        BigDecimal spendThresholdPlatinum = new BigDecimal("10000");
         LocalDateTime lastPurchaseDate = customer.getLastPurchaseDate();
 
         // Check for Platinum tier
-        if (customer.getAnnualSpend().compareTo(spendThresholdPlatinum) >= 0) {
+        if (customer.getAnnualSpend().compareTo(PLATINUM_SPEND_THRESHOLD) >= 0) {
             if (lastPurchaseDate != null && lastPurchaseDate.isAfter(effectiveNow.minusMonths(6))) {
-                return "Platinum";
+                return PLATINUM;
             }
         }
 
         // Check for Gold tier
-        if (customer.getAnnualSpend().compareTo(spendThresholdGold) >= 0 && customer.getAnnualSpend().compareTo(spendThresholdPlatinum) < 0) {
+        if (customer.getAnnualSpend().compareTo(GOLD_SPEND_THRESHOLD) >= 0 && customer.getAnnualSpend().compareTo(PLATINUM_SPEND_THRESHOLD) < 0) {
             if (lastPurchaseDate != null && lastPurchaseDate.isAfter(effectiveNow.minusMonths(12))) {
-                return "Gold";
+                return GOLD;
             }
         }
 
         // Default to Bronze if not Platinum or Gold
-        return "Bronze";
+        return BRONZE;
     }
 
     // Provide a version of the calculation method that uses LocalDateTime.now() for convenience in controllers
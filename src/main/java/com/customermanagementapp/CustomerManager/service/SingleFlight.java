@@ -0,0 +1,122 @@
+package com.customermanagementapp.CustomerManager.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Coalesces concurrent identical calls: the first caller for a key runs the call, and callers arriving while it
+ * is still in flight wait for and share its result (or its exception) instead of running their own.
+ *
+ * Waiters give up after {@code maxWait} and run the call themselves, so a slow leader cannot stall them
+ * indefinitely. {@link #forget} drops in-flight calls so that callers arriving afterwards start a fresh one.
+ */
+public class SingleFlight {
+
+    @FunctionalInterface
+    public interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private final Duration maxWait;
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counters> countersByOperation = new ConcurrentHashMap<>();
+
+    public SingleFlight(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Runs {@code call} for {@code operation} + {@code key}, or joins the identical call already in flight.
+     * The operation name is only used to group the counters.
+     */
+    @SuppressWarnings("unchecked")
+    public <T, E extends Exception> T execute(String operation, String key, Call<T, E> call) throws E {
+        Counters counters = countersByOperation.computeIfAbsent(operation, name -> new Counters());
+        String flightKey = operation + ":" + key;
+
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, flight);
+        if (existing == null) {
+            counters.executed.increment();
+            try {
+                T result = call.call();
+                flight.complete(result);
+                return result;
+            } catch (Throwable failure) {
+                flight.completeExceptionally(failure);
+                throw failure;
+            } finally {
+                inFlight.remove(flightKey, flight);
+            }
+        }
+
+        try {
+            Object result = existing.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            counters.coalesced.increment();
+            return (T) result;
+        } catch (ExecutionException e) {
+            counters.coalesced.increment();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw (E) cause; // Only the call itself can complete the flight, so this is its checked exception
+        } catch (TimeoutException e) {
+            counters.waitTimeouts.increment();
+            counters.executed.increment();
+            return call.call();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for in-flight call " + flightKey, e);
+        }
+    }
+
+    // Drops in-flight calls whose key matches; callers already waiting on them still receive their result
+    public void forget(String operation, Predicate<String> keyFilter) {
+        String prefix = operation + ":";
+        inFlight.keySet().removeIf(flightKey -> flightKey.startsWith(prefix) && keyFilter.test(flightKey.substring(prefix.length())));
+    }
+
+    public void forgetAll(String operation) {
+        forget(operation, key -> true);
+    }
+
+    // Number of callers currently blocked on the in-flight call for this key (estimate, for monitoring and tests)
+    int waiters(String operation, String key) {
+        CompletableFuture<Object> flight = inFlight.get(operation + ":" + key);
+        return flight == null ? 0 : flight.getNumberOfDependents();
+    }
+
+    // Snapshot of the counters per operation, sorted by operation name
+    public Map<String, Stats> stats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        countersByOperation.forEach((operation, counters) -> stats.put(operation,
+                new Stats(counters.executed.sum(), counters.coalesced.sum(), counters.waitTimeouts.sum())));
+        return stats;
+    }
+
+    /**
+     * @param executed     calls that actually ran (leaders, plus waiters that timed out)
+     * @param coalesced    calls answered from another caller's in-flight result, i.e. database calls saved
+     * @param waitTimeouts waiters that gave up on the in-flight call and ran their own
+     */
+    public record Stats(long executed, long coalesced, long waitTimeouts) {
+    }
+
+    private static final class Counters {
+        final LongAdder executed = new LongAdder();
+        final LongAdder coalesced = new LongAdder();
+        final LongAdder waitTimeouts = new LongAdder();
+    }
+}
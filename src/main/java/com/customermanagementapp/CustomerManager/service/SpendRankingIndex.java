@@ -0,0 +1,363 @@
+package com.customermanagementapp.CustomerManager.service;
+
+import com.customermanagementapp.CustomerManager.entity.Customer;
+import com.customermanagementapp.CustomerManager.repository.CustomerRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * In-memory order-statistic index of customers ranked by annual spend (highest first, ties broken by lowest ID).
+ *
+ * Customers are kept in a concurrent skip list for ordered top-N reads. For ranks they are also split into
+ * logarithmic spend buckets (16 per doubling): a Fenwick tree counts customers per bucket, and each bucket holds
+ * its customers in a size-augmented treap. A rank is the count of higher buckets plus the position inside the
+ * bucket, which is O(log n) however the customers are spread over buckets.
+ *
+ * Callers run each database write through {@link #writeLocked}, which holds a per-customer (striped) lock
+ * across the write and the matching {@link #put}/{@link #remove}, so the index applies writes to a customer
+ * in the same order as the database. Writes to different customers rarely share a stripe and never wait on
+ * a global lock. Reads take no lock and may briefly miss a write that is still being applied to another customer.
+ */
+@Component
+public class SpendRankingIndex {
+
+    private static final int BUCKETS_PER_DOUBLING = 16;
+    private static final int BUCKET_COUNT = BUCKETS_PER_DOUBLING * 64; // Spend above 2^64 shares the last bucket
+    private static final double LOG_2 = Math.log(2);
+    private static final int WRITE_LOCK_STRIPES = 64;
+
+    private static final Comparator<Entry> HIGHEST_SPEND_FIRST = Comparator
+            .comparing(Entry::annualSpend, Comparator.reverseOrder())
+            .thenComparingLong(Entry::customerId);
+
+    @FunctionalInterface
+    public interface Write<T, E extends Exception> {
+        T apply() throws E;
+    }
+
+    private final CustomerRepository customerRepository;
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_LOCK_STRIPES];
+    private volatile State state = new State();
+
+    @Autowired
+    public SpendRankingIndex(CustomerRepository customerRepository) {
+        this.customerRepository = customerRepository;
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Runs a database write for one customer, together with its index update, under that customer's write lock.
+     * The write must be committed when {@code write} returns, so the next writer for the customer sees it.
+     */
+    public <T, E extends Exception> T writeLocked(Long customerId, Write<T, E> write) throws E {
+        ReentrantLock lock = writeLocks[Math.floorMod(customerId.hashCode(), WRITE_LOCK_STRIPES)];
+        lock.lock();
+        try {
+            return write.apply();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reloads the whole index from the database. Called once at startup; writes racing a rebuild may be lost,
+     * so this is not meant to be called while the API is taking traffic.
+     */
+    @PostConstruct
+    public void rebuild() {
+        rebuild(customerRepository.findAll());
+    }
+
+    public void rebuild(Collection<Customer> customers) {
+        State fresh = new State();
+        for (Customer customer : customers) {
+            put(fresh, customer);
+        }
+        state = fresh;
+    }
+
+    // Adds the customer, or moves it to its new position if its spend changed. Call inside writeLocked.
+    public void put(Customer customer) {
+        put(state, customer);
+    }
+
+    // Call inside writeLocked
+    public void remove(Long customerId) {
+        State current = state;
+        current.byId.computeIfPresent(customerId, (id, previous) -> {
+            current.unlink(previous);
+            return null;
+        });
+    }
+
+    /**
+     * Returns the customer's 1-based position in the spend ranking and the number of ranked customers,
+     * or empty if the customer is not indexed. The customer is a snapshot owned by the index and must not be modified.
+     *
+     * The bucket counts and the bucket treaps are updated one after the other, and each concurrent write that
+     * moves another customer can briefly show in only one of them. With k such writes in progress the position
+     * can be off by up to k; it is clamped to between 1 and the total, and is exact when no writes are in progress.
+     */
+    public Optional<RankedCustomer> rankOf(Long customerId) {
+        State current = state;
+        Entry entry = current.byId.get(customerId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        long ahead = current.counts.countAbove(entry.bucket()) + current.buckets[entry.bucket()].countBefore(entry);
+        long total = Math.max(current.counts.total(), 1);
+        return Optional.of(new RankedCustomer(entry.snapshot(), Math.min(ahead + 1, total), total));
+    }
+
+    /**
+     * Returns a lazy stream of the customers with {@code minSpend <= annualSpend < maxSpend}, highest annual spend
+     * first; either bound may be null for no bound. Finding the band is O(log n), reading its first k costs O(k).
+     * The customers are detached snapshots owned by the index and must not be modified.
+     */
+    public Stream<Customer> highestSpendFirst(BigDecimal minSpend, BigDecimal maxSpend) {
+        NavigableSet<Entry> band = state.ordered;
+        // Ties are ordered by ID, so a probe with the largest ID sorts after every entry of the same spend
+        if (maxSpend != null) {
+            band = band.tailSet(Entry.probe(maxSpend), false);
+        }
+        if (minSpend != null) {
+            band = band.headSet(Entry.probe(minSpend), true);
+        }
+        return band.stream().map(Entry::snapshot);
+    }
+
+    private static void put(State target, Customer customer) {
+        if (customer == null || customer.getCustomerId() == null) {
+            return;
+        }
+        Entry next = Entry.of(customer);
+        target.byId.compute(next.customerId(), (id, previous) -> {
+            if (previous != null) {
+                target.unlink(previous);
+            }
+            target.link(next);
+            return next;
+        });
+    }
+
+    static int bucketOf(BigDecimal annualSpend) {
+        double spend = annualSpend.doubleValue();
+        if (!(spend > 0)) {
+            return 0;
+        }
+        int bucket = (int) (Math.log1p(spend) / LOG_2 * BUCKETS_PER_DOUBLING);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    public record RankedCustomer(Customer customer, long rank, long total) {
+    }
+
+    private record Entry(long customerId, BigDecimal annualSpend, int bucket, Customer snapshot) {
+
+        static Entry of(Customer customer) {
+            BigDecimal spend = customer.getAnnualSpend() != null ? customer.getAnnualSpend() : BigDecimal.ZERO;
+            // Copy the entity so later changes to the managed instance cannot shift it inside the ordering
+            Customer snapshot = new Customer(customer.getCustomerId(), customer.getName(), customer.getEmail(),
+                    spend, customer.getLastPurchaseDate());
+            return new Entry(customer.getCustomerId(), spend, bucketOf(spend), snapshot);
+        }
+
+        // Search key only, never stored
+        static Entry probe(BigDecimal annualSpend) {
+            return new Entry(Long.MAX_VALUE, annualSpend, bucketOf(annualSpend), null);
+        }
+    }
+
+    private static final class State {
+        final ConcurrentHashMap<Long, Entry> byId = new ConcurrentHashMap<>();
+        final ConcurrentSkipListSet<Entry> ordered = new ConcurrentSkipListSet<>(HIGHEST_SPEND_FIRST);
+        final BucketCounts counts = new BucketCounts(BUCKET_COUNT);
+        final RankTree[] buckets = new RankTree[BUCKET_COUNT];
+
+        State() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new RankTree();
+            }
+        }
+
+        void link(Entry entry) {
+            ordered.add(entry);
+            buckets[entry.bucket()].add(entry);
+            counts.add(entry.bucket(), 1);
+        }
+
+        void unlink(Entry entry) {
+            ordered.remove(entry);
+            buckets[entry.bucket()].remove(entry);
+            counts.add(entry.bucket(), -1);
+        }
+    }
+
+    /**
+     * Treap of one bucket's entries in ranking order, with subtree sizes so the number of entries ahead of
+     * a given one is found in O(log n). Each bucket has its own monitor, so writers only contend within a bucket.
+     */
+    private static final class RankTree {
+        private Node root;
+
+        synchronized void add(Entry entry) {
+            root = insert(root, new Node(entry, ThreadLocalRandom.current().nextInt()));
+        }
+
+        synchronized void remove(Entry entry) {
+            root = delete(root, entry);
+        }
+
+        synchronized long countBefore(Entry entry) {
+            long count = 0;
+            Node node = root;
+            while (node != null) {
+                if (HIGHEST_SPEND_FIRST.compare(entry, node.entry) <= 0) {
+                    node = node.left;
+                } else {
+                    count += size(node.left) + 1;
+                    node = node.right;
+                }
+            }
+            return count;
+        }
+
+        private static Node insert(Node node, Node added) {
+            if (node == null) {
+                return added;
+            }
+            if (added.priority > node.priority) {
+                Node[] parts = split(node, added.entry);
+                added.left = parts[0];
+                added.right = parts[1];
+                return resize(added);
+            }
+            if (HIGHEST_SPEND_FIRST.compare(added.entry, node.entry) < 0) {
+                node.left = insert(node.left, added);
+            } else {
+                node.right = insert(node.right, added);
+            }
+            return resize(node);
+        }
+
+        private static Node delete(Node node, Entry entry) {
+            if (node == null) {
+                return null;
+            }
+            int cmp = HIGHEST_SPEND_FIRST.compare(entry, node.entry);
+            if (cmp == 0) {
+                return merge(node.left, node.right);
+            }
+            if (cmp < 0) {
+                node.left = delete(node.left, entry);
+            } else {
+                node.right = delete(node.right, entry);
+            }
+            return resize(node);
+        }
+
+        // Splits into the entries ordered before the key and the rest
+        private static Node[] split(Node node, Entry key) {
+            if (node == null) {
+                return new Node[2];
+            }
+            if (HIGHEST_SPEND_FIRST.compare(node.entry, key) < 0) {
+                Node[] parts = split(node.right, key);
+                node.right = parts[0];
+                parts[0] = resize(node);
+                return parts;
+            }
+            Node[] parts = split(node.left, key);
+            node.left = parts[1];
+            parts[1] = resize(node);
+            return parts;
+        }
+
+        private static Node merge(Node left, Node right) {
+            if (left == null) {
+                return right;
+            }
+            if (right == null) {
+                return left;
+            }
+            if (left.priority > right.priority) {
+                left.right = merge(left.right, right);
+                return resize(left);
+            }
+            right.left = merge(left, right.left);
+            return resize(right);
+        }
+
+        private static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        private static Node resize(Node node) {
+            node.size = size(node.left) + size(node.right) + 1;
+            return node;
+        }
+
+        private static final class Node {
+            final Entry entry;
+            final int priority;
+            Node left;
+            Node right;
+            int size = 1;
+
+            Node(Entry entry, int priority) {
+                this.entry = entry;
+                this.priority = priority;
+            }
+        }
+    }
+
+    // Fenwick (binary indexed) tree of customer counts per spend bucket, updated with atomic adds
+    private static final class BucketCounts {
+        private final AtomicLongArray tree;
+        private final int size;
+
+        BucketCounts(int size) {
+            this.size = size;
+            this.tree = new AtomicLongArray(size + 1);
+        }
+
+        void add(int bucket, long delta) {
+            for (int i = bucket + 1; i <= size; i += i & -i) {
+                tree.addAndGet(i, delta);
+            }
+        }
+
+        // Number of customers in buckets 0..bucket inclusive
+        long countUpTo(int bucket) {
+            long sum = 0;
+            for (int i = bucket + 1; i > 0; i -= i & -i) {
+                sum += tree.get(i);
+            }
+            return sum;
+        }
+
+        long countAbove(int bucket) {
+            return Math.max(0, total() - countUpTo(bucket));
+        }
+
+        long total() {
+            return countUpTo(size - 1);
+        }
+    }
+}
@@ -1,25 +1,42 @@
 package com.customermanagementapp.CustomerManager;
 
+import com.customermanagementapp.CustomerManager.dto.ReadCoalescingStatsDTO;
 import com.customermanagementapp.CustomerManager.entity.Customer;
 import com.customermanagementapp.CustomerManager.repository.CustomerRepository;
+import com.customermanagementapp.CustomerManager.service.CustomerService;
+import com.customermanagementapp.CustomerManager.service.SpendRankingIndex;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.hamcrest.Matchers.*; // Import necessary matchers
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 @SpringBootTest
@@ -29,23 +46,52 @@ class CustomerManagerApplicationTest {
 	@Autowired
 	private MockMvc mockMvc;
 
-	@Autowired
+	@SpyBean
 	private CustomerRepository customerRepository;
 
 	@Autowired
 	private ObjectMapper objectMapper;
 
+	@Autowired
+	private SpendRankingIndex spendRankingIndex;
+
+	@Autowired
+	private CustomerService customerService;
+
 	private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
 
+	// Thread whose stubbed repository calls are held in flight by holdHeldThreadAfterCall
+	private final AtomicReference<Thread> heldThread = new AtomicReference<>();
+
 	// --- Helper methods for creating test data ---
 	private Customer createCustomer(String name, String email, BigDecimal annualSpend, LocalDateTime lastPurchaseDate) {
 		Customer customer = new Customer(null, name, email, annualSpend, lastPurchaseDate);
 		return customerRepository.save(customer);
 	}
 
+	// Runs the real repository method, then keeps the held thread's call in flight until released
+	private Answer<Object> holdHeldThreadAfterCall(CountDownLatch queried, CountDownLatch release) {
+		return invocation -> {
+			Object result = invocation.callRealMethod();
+			if (Thread.currentThread() == heldThread.get()) {
+				queried.countDown();
+				assertTrue(release.await(10, TimeUnit.SECONDS));
+			}
+			return result;
+		};
+	}
+
+	private ReadCoalescingStatsDTO readCoalescingStats(String operation) {
+		return customerService.getReadCoalescingStats().stream()
+				.filter(stats -> stats.getOperation().equals(operation))
+				.findFirst()
+				.orElse(new ReadCoalescingStatsDTO(operation, 0, 0, 0));
+	}
+
 	@BeforeEach
 	void setUp() {
 		customerRepository.deleteAll();
+		spendRankingIndex.rebuild(); // Test data is written straight to the repository, bypassing the service
 	}
 
 	// --- GET /api/customers Tests (All, By Name, By Email - now returning DTOs) ---
@@ -229,4 +275,290 @@ class CustomerManagerApplicationTest {
 				.andExpect(content().string("Gold")); // Check the exact string response
 	}
 
+
+	// --- Spend ranking Tests (GET /api/customers/top and /api/customers/{id}/rank) ---
+	@Test
+	void testGetTopSpenders_OrderedBySpendAndFilteredByTier() throws Exception {
+		LocalDateTime now = LocalDateTime.now();
+		createCustomer("Small", "small@example.com", new BigDecimal("50.00"), now.minusMonths(1)); // Bronze
+		createCustomer("Gold", "gold@example.com", new BigDecimal("2500.00"), now.minusMonths(2)); // Gold
+		createCustomer("Platinum", "platinum@example.com", new BigDecimal("15000.00"), now.minusMonths(1)); // Platinum
+		createCustomer("Lapsed", "lapsed@example.com", new BigDecimal("20000.00"), now.minusMonths(13)); // Bronze
+		spendRankingIndex.rebuild();
+
+		mockMvc.perform(get("/api/customers/top").param("limit", "3"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(3)))
+				.andExpect(jsonPath("$[0].email", is("lapsed@example.com")))
+				.andExpect(jsonPath("$[1].email", is("platinum@example.com")))
+				.andExpect(jsonPath("$[2].email", is("gold@example.com")));
+
+		mockMvc.perform(get("/api/customers/top").param("tier", "Gold"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(1)))
+				.andExpect(jsonPath("$[0].email", is("gold@example.com")));
+
+		mockMvc.perform(get("/api/customers/top").param("tier", "platinum"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(1)))
+				.andExpect(jsonPath("$[0].email", is("platinum@example.com")));
+
+		mockMvc.perform(get("/api/customers/top").param("tier", "bronze"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(2)))
+				.andExpect(jsonPath("$[0].email", is("lapsed@example.com")))
+				.andExpect(jsonPath("$[1].email", is("small@example.com")));
+
+		mockMvc.perform(get("/api/customers/top").param("limit", "0"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.status", is("BAD_REQUEST")))
+				.andExpect(jsonPath("$.message", is("limit must be between 1 and 1000")));
+
+		mockMvc.perform(get("/api/customers/top").param("tier", "silver"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.message", is("tier must be one of Platinum, Gold or Bronze")));
+	}
+
+	@Test
+	void testGetCustomerSpendRank_FollowsWrites() throws Exception {
+		Customer low = createCustomer("Low", "low@example.com", new BigDecimal("100.00"), null);
+		Customer high = createCustomer("High", "high@example.com", new BigDecimal("9000.00"), null);
+		spendRankingIndex.rebuild();
+
+		mockMvc.perform(get("/api/customers/{id}/rank", low.getCustomerId()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.rank", is(2)))
+				.andExpect(jsonPath("$.totalCustomers", is(2)));
+
+		Customer raised = new Customer(null, "Low", "low@example.com", new BigDecimal("9500.00"), null);
+		mockMvc.perform(put("/api/customers/{id}", low.getCustomerId())
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(raised)))
+				.andExpect(status().isOk());
+
+		mockMvc.perform(get("/api/customers/{id}/rank", low.getCustomerId()))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.rank", is(1)));
+
+		mockMvc.perform(delete("/api/customers/{id}", high.getCustomerId()))
+				.andExpect(status().isNoContent());
+
+		mockMvc.perform(get("/api/customers/{id}/rank", high.getCustomerId()))
+				.andExpect(status().isNotFound());
+		mockMvc.perform(get("/api/customers/{id}/rank", low.getCustomerId()))
+				.andExpect(jsonPath("$.rank", is(1)))
+				.andExpect(jsonPath("$.totalCustomers", is(1)));
+	}
+
+
+	@Test
+	void testGetCustomerSpendRank_EqualSpendRankedByIdWithinOneBucket() throws Exception {
+		List<Customer> zeroSpenders = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			zeroSpenders.add(createCustomer("Zero" + i, "zero" + i + "@example.com", new BigDecimal("0.00"), null));
+		}
+		createCustomer("Top", "top@example.com", new BigDecimal("1000.00"), null);
+		spendRankingIndex.rebuild();
+
+		for (int i = 0; i < zeroSpenders.size(); i++) {
+			mockMvc.perform(get("/api/customers/{id}/rank", zeroSpenders.get(i).getCustomerId()))
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$.rank", is(i + 2)))
+					.andExpect(jsonPath("$.totalCustomers", is(6)));
+		}
+	}
+
+	@Test
+	void testSpendRank_ConcurrentUpdatesAndDeleteKeepIndexInStepWithDatabase() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			for (int round = 0; round < 20; round++) {
+				String email = "race" + round + "@example.com";
+				Customer customer = createCustomer("Race", email, new BigDecimal("100.50"), null);
+				spendRankingIndex.rebuild();
+				Long id = customer.getCustomerId();
+
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<Integer>> updates = new ArrayList<>();
+				for (String spend : List.of("5000.50", "7000.50")) {
+					String body = objectMapper.writeValueAsString(new Customer(null, "Race", email, new BigDecimal(spend), null));
+					updates.add(executor.submit(() -> {
+						start.await();
+						return mockMvc.perform(put("/api/customers/{id}", id)
+										.contentType(MediaType.APPLICATION_JSON)
+										.content(body))
+								.andReturn().getResponse().getStatus();
+					}));
+				}
+				Future<Integer> deletion = executor.submit(() -> {
+					start.await();
+					return mockMvc.perform(delete("/api/customers/{id}", id)).andReturn().getResponse().getStatus();
+				});
+				start.countDown();
+
+				for (Future<Integer> update : updates) {
+					assertTrue(List.of(200, 404).contains(update.get(10, TimeUnit.SECONDS)));
+				}
+				assertEquals(204, deletion.get(10, TimeUnit.SECONDS));
+
+				// The delete always lands, so an update that ran after it must not leave a ghost entry behind
+				assertTrue(customerRepository.findById(id).isEmpty());
+				mockMvc.perform(get("/api/customers/{id}/rank", id))
+						.andExpect(status().isNotFound());
+			}
+
+			// Two concurrent updates: the index must end with the spend the database kept
+			Customer customer = createCustomer("Race", "race.final@example.com", new BigDecimal("100.50"), null);
+			spendRankingIndex.rebuild();
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Integer>> updates = new ArrayList<>();
+			for (String spend : List.of("5000.50", "7000.50")) {
+				String body = objectMapper.writeValueAsString(new Customer(null, "Race", "race.final@example.com", new BigDecimal(spend), null));
+				updates.add(executor.submit(() -> {
+					start.await();
+					return mockMvc.perform(put("/api/customers/{id}", customer.getCustomerId())
+									.contentType(MediaType.APPLICATION_JSON)
+									.content(body))
+							.andReturn().getResponse().getStatus();
+				}));
+			}
+			start.countDown();
+			for (Future<Integer> update : updates) {
+				assertEquals(200, update.get(10, TimeUnit.SECONDS));
+			}
+
+			BigDecimal storedSpend = customerRepository.findById(customer.getCustomerId()).orElseThrow().getAnnualSpend();
+			mockMvc.perform(get("/api/customers/{id}/rank", customer.getCustomerId()))
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$.annualSpend", closeTo(storedSpend.doubleValue(), 0.001)));
+
+			// A create whose row is saved but not yet indexed, while an update or a delete of the new ID runs first
+			for (boolean deleteFirst : new boolean[] {false, true}) {
+				customerRepository.deleteAll();
+				spendRankingIndex.rebuild();
+				CountDownLatch saved = new CountDownLatch(1);
+				CountDownLatch release = new CountDownLatch(1);
+				doAnswer(holdHeldThreadAfterCall(saved, release)).when(customerRepository).save(any());
+
+				String created = objectMapper.writeValueAsString(new Customer(null, "Created", "created@example.com", new BigDecimal("100.50"), null));
+				Future<Integer> creation = executor.submit(() -> {
+					heldThread.set(Thread.currentThread());
+					return mockMvc.perform(post("/api/customers")
+									.contentType(MediaType.APPLICATION_JSON)
+									.content(created))
+							.andReturn().getResponse().getStatus();
+				});
+				try {
+					assertTrue(saved.await(10, TimeUnit.SECONDS));
+					Long id = customerRepository.findAll().get(0).getCustomerId();
+					if (deleteFirst) {
+						mockMvc.perform(delete("/api/customers/{id}", id))
+								.andExpect(status().isNoContent());
+					} else {
+						String updated = objectMapper.writeValueAsString(new Customer(null, "Created", "created@example.com", new BigDecimal("9000.50"), null));
+						mockMvc.perform(put("/api/customers/{id}", id)
+										.contentType(MediaType.APPLICATION_JSON)
+										.content(updated))
+								.andExpect(status().isOk());
+					}
+					release.countDown();
+					assertEquals(201, creation.get(10, TimeUnit.SECONDS));
+					heldThread.set(null);
+
+					if (deleteFirst) {
+						mockMvc.perform(get("/api/customers/{id}/rank", id))
+								.andExpect(status().isNotFound());
+					} else {
+						mockMvc.perform(get("/api/customers/{id}/rank", id))
+								.andExpect(status().isOk())
+								.andExpect(jsonPath("$.annualSpend", closeTo(9000.50, 0.001)));
+					}
+				} finally {
+					release.countDown();
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	// --- Read coalescing Tests ---
+	@Test
+	void testGetCustomerById_ReadIssuedAfterUpdateDoesNotJoinReadInFlightBeforeIt() throws Exception {
+		Customer customer = createCustomer("Before", "before@example.com", new BigDecimal("100.00"), null);
+		CountDownLatch queried = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(holdHeldThreadAfterCall(queried, release)).when(customerRepository).findById(any());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> heldRead = executor.submit(() -> {
+				heldThread.set(Thread.currentThread());
+				return mockMvc.perform(get("/api/customers/{id}", customer.getCustomerId()))
+						.andReturn().getResponse().getContentAsString();
+			});
+			assertTrue(queried.await(10, TimeUnit.SECONDS)); // Old row read, call still in flight
+
+			Customer updatedDetails = new Customer(null, "After", "before@example.com", new BigDecimal("100.00"), null);
+			mockMvc.perform(put("/api/customers/{id}", customer.getCustomerId())
+							.contentType(MediaType.APPLICATION_JSON)
+							.content(objectMapper.writeValueAsString(updatedDetails)))
+					.andExpect(status().isOk());
+
+			ReadCoalescingStatsDTO before = readCoalescingStats("getCustomerById");
+			mockMvc.perform(get("/api/customers/{id}", customer.getCustomerId()))
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$.name", is("After")));
+			ReadCoalescingStatsDTO after = readCoalescingStats("getCustomerById");
+			// Neither joined the held read nor waited on it until max-wait
+			assertEquals(before.getCoalesced(), after.getCoalesced());
+			assertEquals(before.getWaitTimeouts(), after.getWaitTimeouts());
+
+			release.countDown();
+			assertTrue(heldRead.get(10, TimeUnit.SECONDS).contains("\"name\":\"Before\""));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testGetCustomersByName_SearchIssuedAfterUpdateDoesNotJoinSearchInFlightBeforeIt() throws Exception {
+		Customer customer = createCustomer("Shared Before", "shared@example.com", new BigDecimal("100.00"), null);
+		CountDownLatch queried = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(holdHeldThreadAfterCall(queried, release)).when(customerRepository).findByNameContainingIgnoreCase(anyString());
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> heldSearch = executor.submit(() -> {
+				heldThread.set(Thread.currentThread());
+				return mockMvc.perform(get("/api/customers").param("name", "shared"))
+						.andReturn().getResponse().getContentAsString();
+			});
+			assertTrue(queried.await(10, TimeUnit.SECONDS)); // Old rows read, search still in flight
+
+			Customer updatedDetails = new Customer(null, "Shared After", "shared@example.com", new BigDecimal("100.00"), null);
+			mockMvc.perform(put("/api/customers/{id}", customer.getCustomerId())
+							.contentType(MediaType.APPLICATION_JSON)
+							.content(objectMapper.writeValueAsString(updatedDetails)))
+					.andExpect(status().isOk());
+
+			ReadCoalescingStatsDTO before = readCoalescingStats("getCustomersByName");
+			mockMvc.perform(get("/api/customers").param("name", "shared"))
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$", hasSize(1)))
+					.andExpect(jsonPath("$[0].name", is("Shared After")));
+			ReadCoalescingStatsDTO after = readCoalescingStats("getCustomersByName");
+			assertEquals(before.getCoalesced(), after.getCoalesced());
+			assertEquals(before.getWaitTimeouts(), after.getWaitTimeouts());
+
+			release.countDown();
+			assertTrue(heldSearch.get(10, TimeUnit.SECONDS).contains("\"name\":\"Shared Before\""));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
 }
@@ -0,0 +1,151 @@
+package com.customermanagementapp.CustomerManager.service;
+
+import com.customermanagementapp.CustomerManager.error.CustomerNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+	private static final int WAITERS = 8;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	// Starts a leader whose call blocks on the latch, and waits until it is running
+	private Future<String> startBlockedLeader(SingleFlight singleFlight, CountDownLatch release, AtomicInteger calls,
+											  Exception failure) throws InterruptedException {
+		CountDownLatch running = new CountDownLatch(1);
+		Future<String> leader = executor.submit(() -> singleFlight.execute("op", "key", () -> {
+			calls.incrementAndGet();
+			running.countDown();
+			release.await();
+			if (failure != null) {
+				throw failure;
+			}
+			return "leader";
+		}));
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+		return leader;
+	}
+
+	private void awaitWaiters(SingleFlight singleFlight, int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (singleFlight.waiters("op", "key") < expected) {
+			assertTrue(System.nanoTime() < deadline, "waiters did not join the in-flight call");
+			Thread.sleep(5);
+		}
+	}
+
+	@Test
+	void testConcurrentIdenticalCallsShareOneExecution() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(Duration.ofSeconds(30));
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		Future<String> leader = startBlockedLeader(singleFlight, release, calls, null);
+
+		List<Future<String>> waiters = new ArrayList<>();
+		for (int i = 0; i < WAITERS; i++) {
+			waiters.add(executor.submit(() -> singleFlight.execute("op", "key", () -> {
+				calls.incrementAndGet();
+				return "own";
+			})));
+		}
+		awaitWaiters(singleFlight, WAITERS);
+		release.countDown();
+
+		assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+		for (Future<String> waiter : waiters) {
+			assertEquals("leader", waiter.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, calls.get());
+		SingleFlight.Stats stats = singleFlight.stats().get("op");
+		assertEquals(1, stats.executed());
+		assertEquals(WAITERS, stats.coalesced());
+		assertEquals(0, stats.waitTimeouts());
+	}
+
+	@Test
+	void testLeaderExceptionReachesEveryWaiter() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(Duration.ofSeconds(30));
+		CountDownLatch release = new CountDownLatch(1);
+		CustomerNotFoundException notFound = new CustomerNotFoundException("Customer not found with id: 1");
+		Future<String> leader = startBlockedLeader(singleFlight, release, new AtomicInteger(), notFound);
+
+		List<Future<String>> waiters = new ArrayList<>();
+		for (int i = 0; i < WAITERS; i++) {
+			waiters.add(executor.submit(() -> singleFlight.<String, CustomerNotFoundException>execute("op", "key", () -> "own")));
+		}
+		awaitWaiters(singleFlight, WAITERS);
+		release.countDown();
+
+		ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+		assertSame(notFound, leaderFailure.getCause());
+		for (Future<String> waiter : waiters) {
+			ExecutionException failure = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+			assertSame(notFound, failure.getCause());
+		}
+		assertEquals(WAITERS, singleFlight.stats().get("op").coalesced());
+	}
+
+	@Test
+	void testWaiterPastMaxWaitRunsItsOwnCall() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(Duration.ofMillis(50));
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		Future<String> leader = startBlockedLeader(singleFlight, release, calls, null);
+
+		String result = singleFlight.execute("op", "key", () -> {
+			calls.incrementAndGet();
+			return "own";
+		});
+
+		assertEquals("own", result);
+		release.countDown();
+		assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+		assertEquals(2, calls.get());
+		SingleFlight.Stats stats = singleFlight.stats().get("op");
+		assertEquals(2, stats.executed());
+		assertEquals(0, stats.coalesced());
+		assertEquals(1, stats.waitTimeouts());
+	}
+
+	@Test
+	void testCallerAfterForgetStartsFreshCall() throws Exception {
+		SingleFlight singleFlight = new SingleFlight(Duration.ofSeconds(30));
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger calls = new AtomicInteger();
+		Future<String> leader = startBlockedLeader(singleFlight, release, calls, null);
+
+		singleFlight.forget("op", key -> key.equals("key"));
+		String result = singleFlight.execute("op", "key", () -> {
+			calls.incrementAndGet();
+			return "fresh";
+		});
+
+		assertEquals("fresh", result); // Returned while the old flight is still blocked, so it did not join it
+		release.countDown();
+		assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+		assertEquals(2, calls.get());
+		SingleFlight.Stats stats = singleFlight.stats().get("op");
+		assertEquals(2, stats.executed());
+		assertEquals(0, stats.coalesced());
+		assertEquals(0, stats.waitTimeouts());
+	}
+}